@@ -0,0 +1,267 @@
+package com.andreyprodromov.csv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * This class ingests many csv files concurrently while keeping the number of files and bytes in flight bounded.
+ * <p>
+ * Files are parsed with {@link CsvMagikk#parseAndValidateCsv(String, CsvRecoveryPolicy)} semantics, but are read
+ * as they are parsed and every row is streamed to a {@link CsvRowSink} instead of being collected. Only the read
+ * buffers and the row being parsed are held in memory, however large the file is.
+ * <p>
+ * The in-flight bytes budget approximates the heap used while parsing: every file reserves its read buffers plus
+ * four bytes per character of its longest possible row, which is the file size capped at {@value #MAX_ROW_CHARS}
+ * characters. A file with a longer row fails with an {@link IllegalStateException} in its {@link CsvFileResult}.
+ * Rows kept by the {@link CsvRowSink} are not counted. The budget is shared by all {@code ingest} calls on the same
+ * instance and is granted in the order files ask for it, so a large file is never overtaken by smaller ones.
+ * A budget smaller than a single reservation still lets files through, one at a time.
+ * <p>
+ * Files run on virtual threads when the runtime supports them (Java 21+), otherwise on a fixed thread pool.
+ */
+public class CsvBatchIngestor {
+
+    /**
+     * The maximum number of characters in a single row of an ingested file
+     */
+    public static final int MAX_ROW_CHARS = 256 * 1024;
+
+    // Decoder bytes, BufferedReader chars and parser chars, 8K each
+    private static final int READ_BUFFER_BYTES = 8192 + 2 * 8192 * Character.BYTES;
+
+    // The row being built plus its cell Strings, up to two bytes per character each
+    private static final int HEAP_BYTES_PER_ROW_CHAR = 2 * Character.BYTES;
+
+    private final char columnDelimiter;
+    private final char stringDelimiter;
+    private final int maxConcurrency;
+    private final long maxInFlightBytes;
+
+    // In-flight bytes budget, granted in FIFO order
+    private final ReentrantLock budgetLock = new ReentrantLock();
+    private final Condition budgetReleased = budgetLock.newCondition();
+    private final Deque<Object> budgetQueue = new ArrayDeque<>();
+    private long inFlightBytes;
+
+
+    /**
+     * Creates an ingestor that has a COMMA for column delimiter and DOUBLE QUOTE for string delimiter
+     *
+     * @param maxConcurrency the maximum number of files parsed at the same time
+     * @param maxInFlightBytes the approximate maximum heap used by the files parsed at the same time, see class docs
+     */
+    public CsvBatchIngestor(int maxConcurrency, long maxInFlightBytes) {
+        this(',', '"', maxConcurrency, maxInFlightBytes);
+    }
+
+    /**
+     * @param columnDelimiter the column delimiter of the ingested files
+     * @param stringDelimiter the string delimiter of the ingested files
+     * @param maxConcurrency the maximum number of files parsed at the same time
+     * @param maxInFlightBytes the approximate maximum heap used by the files parsed at the same time, see class docs
+     */
+    public CsvBatchIngestor(char columnDelimiter, char stringDelimiter, int maxConcurrency, long maxInFlightBytes) {
+        if (maxConcurrency < 1) {
+            throw new IllegalStateException("maxConcurrency must be at least 1");
+        }
+
+        if (maxInFlightBytes < 1) {
+            throw new IllegalStateException("maxInFlightBytes must be at least 1");
+        }
+
+        // Fail fast on invalid delimiters instead of failing every file
+        new CsvMagikk(columnDelimiter, stringDelimiter);
+
+        this.columnDelimiter = columnDelimiter;
+        this.stringDelimiter = stringDelimiter;
+        this.maxConcurrency = maxConcurrency;
+        this.maxInFlightBytes = maxInFlightBytes;
+    }
+
+    /**
+     * @param files the csv files to be ingested
+     * @param policy what to do with rows that have errors
+     * @param sink receives the rows of every file, must be thread-safe
+     * @return one result per file, in the order the files were given
+     * @throws InterruptedException if interrupted while waiting for the files to be ingested
+     */
+    public List<CsvFileResult> ingest(
+            Collection<Path> files,
+            CsvRecoveryPolicy policy,
+            CsvRowSink sink
+    ) throws InterruptedException {
+        Semaphore concurrency = new Semaphore(maxConcurrency, true);
+        ExecutorService executor = newExecutor();
+        List<Path> paths = List.copyOf(files);
+
+        try {
+            List<Future<CsvFileResult>> futures = new ArrayList<>(paths.size());
+            for (Path file : paths) {
+                futures.add(executor.submit(() -> ingestFile(file, policy, sink, concurrency)));
+            }
+
+            List<CsvFileResult> results = new ArrayList<>(futures.size());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    // An Error only fails its own file, the rest of the batch is still collected
+                    results.add(new CsvFileResult(paths.get(i), 0, List.of(), false, Duration.ZERO, e.getCause()));
+                }
+            }
+
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param file the csv file to be ingested
+     * @param policy what to do with rows that have errors
+     * @param sink receives the rows of the file
+     * @param concurrency the permits for files parsed at the same time
+     * @return the result of ingesting the file
+     */
+    private CsvFileResult ingestFile(
+            Path file,
+            CsvRecoveryPolicy policy,
+            CsvRowSink sink,
+            Semaphore concurrency
+    ) throws InterruptedException {
+        List<CsvDiagnostic> diagnostics = new ArrayList<>();
+        long[] rowCount = {0};
+
+        long size;
+        try {
+            size = Files.size(file);
+        } catch (IOException e) {
+            return new CsvFileResult(file, 0, diagnostics, false, Duration.ZERO, e);
+        }
+
+        // Bytes are reserved first, so a file waiting for the budget doesn't hold a concurrency permit
+        long reserved = acquireBytes(estimateHeapBytes(size));
+        try {
+            concurrency.acquire();
+        } catch (InterruptedException e) {
+            releaseBytes(reserved);
+            throw e;
+        }
+
+        try {
+            long start = System.nanoTime();
+
+            try {
+                // CsvMagikk reuses its builders, so every file needs its own instance
+                CsvMagikk csvMagikk = new CsvMagikk(columnDelimiter, stringDelimiter);
+                boolean aborted;
+
+                try (Reader csv = Files.newBufferedReader(file)) {
+                    aborted = csvMagikk.parseAndValidateCsv(csv, policy, row -> {
+                        sink.accept(file, row);
+                        rowCount[0]++;
+                    }, diagnostics, MAX_ROW_CHARS);
+                }
+
+                return new CsvFileResult(file, rowCount[0], diagnostics, aborted, elapsed(start), null);
+            } catch (IOException | RuntimeException e) {
+                return new CsvFileResult(file, rowCount[0], diagnostics, false, elapsed(start), e);
+            }
+        } finally {
+            concurrency.release();
+            releaseBytes(reserved);
+        }
+    }
+
+    /**
+     * @param fileSize the size of the file on disk
+     * @return the approximate heap used while the file is parsed
+     */
+    static long estimateHeapBytes(long fileSize) {
+        // A row cannot have more characters than the file has bytes
+        return READ_BUFFER_BYTES + (long) HEAP_BYTES_PER_ROW_CHAR * Math.min(fileSize, MAX_ROW_CHARS);
+    }
+
+    /**
+     * Waits until every earlier request has been granted and the bytes fit in the budget
+     *
+     * @param bytes the number of bytes needed by the file about to be parsed
+     * @return the number of bytes actually reserved, capped at the whole budget
+     */
+    private long acquireBytes(long bytes) throws InterruptedException {
+        long reserved = Math.min(bytes, maxInFlightBytes);
+        Object ticket = new Object();
+
+        budgetLock.lock();
+        try {
+            budgetQueue.addLast(ticket);
+
+            try {
+                while (budgetQueue.peekFirst() != ticket || inFlightBytes + reserved > maxInFlightBytes) {
+                    budgetReleased.await();
+                }
+            } catch (InterruptedException e) {
+                // Give up the place in the queue, so the ones behind can proceed
+                budgetQueue.remove(ticket);
+                budgetReleased.signalAll();
+                throw e;
+            }
+
+            budgetQueue.removeFirst();
+            inFlightBytes += reserved;
+
+            // The next one in the queue may fit as well
+            budgetReleased.signalAll();
+            return reserved;
+        } finally {
+            budgetLock.unlock();
+        }
+    }
+
+    /**
+     * @param reserved the number of bytes returned by {@link #acquireBytes(long)}
+     */
+    private void releaseBytes(long reserved) {
+        budgetLock.lock();
+        try {
+            inFlightBytes -= reserved;
+            budgetReleased.signalAll();
+        } finally {
+            budgetLock.unlock();
+        }
+    }
+
+    private static Duration elapsed(long start) {
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    /**
+     * @return a virtual thread per task executor when running on Java 21+, otherwise a fixed thread pool
+     */
+    private ExecutorService newExecutor() {
+        try {
+            // Looked up reflectively, because the library is compiled for Java 17
+            Method virtualThreadExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtualThreadExecutor.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(maxConcurrency);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.andreyprodromov.csv;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+
+/**
+ * This class stores parsed csv matrices in a binary columnar file, so they can be reloaded without re-parsing.
+ * <p>
+ * Every column is dictionary-encoded: the distinct cell values are stored once as UTF-8 bytes addressed by an
+ * offsets table, followed by one code per row that points into the dictionary. The file also records the size,
+ * last modified time and CRC32C checksum of the source csv, and is treated as stale when any of them change.
+ * A cache file is memory-mapped as a whole, so csv matrices that would need a cache larger than 2 GB cannot be cached.
+ */
+public final class CsvCache {
+
+    private static final int MAGIC = 0x43534D4B; // "CSMK"
+    private static final int VERSION = 1;
+
+    // Code 0 is reserved for null cells, dictionary entries start from 1
+    private static final int NULL_CODE = 0;
+
+    private static final int MAX_MAPPED_SIZE = Integer.MAX_VALUE;
+    private static final int CHECKSUM_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    // magic, version, source size, source modified, source checksum, row count, column count
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + 3 * Long.BYTES + 2 * Integer.BYTES;
+
+    // dictionary size, first offset and code width of an empty column
+    private static final int MIN_COLUMN_SIZE = 2 * Integer.BYTES + Byte.BYTES;
+
+    private CsvCache() {
+    }
+
+    /**
+     * Identifies the exact contents of a source csv, a cache is only used while its source has the same fingerprint
+     *
+     * @param size the size of the source in bytes
+     * @param lastModified the last modified time of the source in milliseconds
+     * @param checksum the CRC32C checksum of the source contents
+     */
+    public record Fingerprint(long size, long lastModified, long checksum) {
+
+        /**
+         * @param source the csv file to fingerprint
+         * @return the fingerprint of the current contents of the file
+         * @throws IOException if the file cannot be read
+         */
+        public static Fingerprint of(Path source) throws IOException {
+            return new Fingerprint(
+                    Files.size(source),
+                    Files.getLastModifiedTime(source).toMillis(),
+                    CsvCache.checksum(source)
+            );
+        }
+
+        /**
+         * Creates the fingerprint from contents that were already read, so it describes exactly the bytes that were
+         * parsed. The modified time must be read before the contents, so a later change is never missed.
+         *
+         * @param contents the contents of the source csv
+         * @param lastModified the last modified time of the source in milliseconds, read before the contents
+         * @return the fingerprint of the contents
+         */
+        public static Fingerprint of(byte[] contents, long lastModified) {
+            CRC32C crc = new CRC32C();
+            crc.update(contents);
+
+            return new Fingerprint(contents.length, lastModified, crc.getValue());
+        }
+    }
+
+    /**
+     * @param rows the parsed csv matrix to be stored, all rows must have the same number of columns
+     * @param source the csv file the matrix was parsed from
+     * @param cacheFile the file to write the cache to, replaced if it already exists
+     * @throws IOException if the source cannot be read or the cache cannot be written
+     * @throws IllegalArgumentException if the matrix is empty, jagged or too large to be cached
+     */
+    public static void save(String[][] rows, Path source, Path cacheFile) throws IOException {
+        save(rows, Fingerprint.of(source), cacheFile);
+    }
+
+    /**
+     * @param rows the parsed csv matrix to be stored, all rows must have the same number of columns
+     * @param source the fingerprint of the csv contents the matrix was parsed from
+     * @param cacheFile the file to write the cache to, replaced if it already exists
+     * @throws IOException if the cache cannot be written
+     * @throws IllegalArgumentException if the matrix is empty, jagged or too large to be cached
+     */
+    public static void save(String[][] rows, Fingerprint source, Path cacheFile) throws IOException {
+        if (rows == null || rows.length == 0) {
+            throw new IllegalArgumentException("Cannot cache an empty csv");
+        }
+
+        int columnCount = rows[0].length;
+        for (String[] row : rows) {
+            if (row.length != columnCount) {
+                throw new IllegalArgumentException("Cannot cache a csv with rows of different length");
+            }
+        }
+
+        Path parent = cacheFile.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(parent, cacheFile.getFileName().toString(), ".tmp");
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(source.size());
+                out.writeLong(source.lastModified());
+                out.writeLong(source.checksum());
+                out.writeInt(rows.length);
+                out.writeInt(columnCount);
+
+                long written = HEADER_SIZE;
+                for (int col = 0; col < columnCount; col++) {
+                    written += writeColumn(out, rows, col, MAX_MAPPED_SIZE - written);
+                }
+            }
+
+            // Write to a temporary file first, so a crash never leaves a half written cache behind
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * @param source the csv file the cache was created from
+     * @param cacheFile the cache file to be loaded
+     * @return the cached csv matrix, or {@code null} if the cache is missing, corrupt or the source has changed
+     * @throws IOException if the source or the cache cannot be read
+     */
+    public static String[][] load(Path source, Path cacheFile) throws IOException {
+        if (!Files.isRegularFile(cacheFile)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > MAX_MAPPED_SIZE) {
+                return null;
+            }
+
+            // The header is read without mapping, so a stale cache is never mapped and can be replaced right away
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header) == -1) {
+                    return null;
+                }
+            }
+
+            header.flip();
+
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+
+            // Cheap checks first, the checksum requires reading the whole source
+            long sourceSize = header.getLong();
+            long sourceModified = header.getLong();
+            long sourceChecksum = header.getLong();
+            if (sourceSize != Files.size(source)
+                || sourceModified != Files.getLastModifiedTime(source).toMillis()
+                || sourceChecksum != checksum(source)) {
+                return null;
+            }
+
+            int rowCount = header.getInt();
+            int columnCount = header.getInt();
+
+            // Every column takes at least one byte per row, so corrupt counts are caught before allocating
+            if (rowCount < 0 || columnCount < 0
+                || (long) columnCount * (MIN_COLUMN_SIZE + (long) rowCount) > size - HEADER_SIZE) {
+                return null;
+            }
+
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, size - HEADER_SIZE);
+            String[][] rows = new String[rowCount][columnCount];
+
+            for (int col = 0; col < columnCount; col++) {
+                if (!readColumn(buf, rows, col)) {
+                    return null;
+                }
+            }
+
+            return rows;
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            // Truncated or corrupt cache, caller should re-parse
+            return null;
+        }
+    }
+
+    /**
+     * @param out the stream to write the column to
+     * @param rows the csv matrix
+     * @param col the index of the column to be written
+     * @param maxSize the number of bytes left before the cache becomes too large to be mapped
+     * @return the number of bytes written
+     */
+    private static long writeColumn(DataOutputStream out, String[][] rows, int col, long maxSize) throws IOException {
+        Map<String, Integer> codes = new HashMap<>();
+        List<byte[]> dictionary = new ArrayList<>();
+        int[] rowCodes = new int[rows.length];
+
+        for (int row = 0; row < rows.length; row++) {
+            String cell = rows[row][col];
+            if (cell == null) {
+                rowCodes[row] = NULL_CODE;
+                continue;
+            }
+
+            Integer code = codes.get(cell);
+            if (code == null) {
+                dictionary.add(cell.getBytes(StandardCharsets.UTF_8));
+                code = dictionary.size();
+                codes.put(cell, code);
+            }
+
+            rowCodes[row] = code;
+        }
+
+        long dataSize = 0;
+        for (byte[] value : dictionary) {
+            dataSize += value.length;
+        }
+
+        int codeWidth = codeWidth(dictionary.size());
+        long columnSize = MIN_COLUMN_SIZE + (long) Integer.BYTES * dictionary.size() + dataSize
+                          + (long) codeWidth * rows.length;
+        if (columnSize > maxSize) {
+            throw new IllegalArgumentException("Cannot cache a csv that needs a cache file larger than 2 GB");
+        }
+
+        // Offsets table has one extra entry, so the length of entry i is offsets[i + 1] - offsets[i]
+        out.writeInt(dictionary.size());
+        int offset = 0;
+        out.writeInt(offset);
+        for (byte[] value : dictionary) {
+            offset += value.length;
+            out.writeInt(offset);
+        }
+
+        for (byte[] value : dictionary) {
+            out.write(value);
+        }
+
+        out.writeByte(codeWidth);
+        for (int code : rowCodes) {
+            switch (codeWidth) {
+                case Byte.BYTES -> out.writeByte(code);
+                case Short.BYTES -> out.writeShort(code);
+                default -> out.writeInt(code);
+            }
+        }
+
+        return columnSize;
+    }
+
+    /**
+     * @param buf the mapped cache positioned at the start of the column
+     * @param rows the csv matrix to be filled
+     * @param col the index of the column to be read
+     * @return false if the column is corrupt
+     */
+    private static boolean readColumn(ByteBuffer buf, String[][] rows, int col) {
+        int dictionarySize = buf.getInt();
+        if (dictionarySize < 0 || (long) Integer.BYTES * (dictionarySize + 1L) > buf.remaining()) {
+            return false;
+        }
+
+        // Offsets start from 0 and never decrease
+        int[] offsets = new int[dictionarySize + 1];
+        int previous = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = buf.getInt();
+            if (offsets[i] < previous || (i == 0 && offsets[i] != 0)) {
+                return false;
+            }
+
+            previous = offsets[i];
+        }
+
+        if (offsets[dictionarySize] > buf.remaining()) {
+            return false;
+        }
+
+        byte[] data = new byte[offsets[dictionarySize]];
+        buf.get(data);
+
+        // Every distinct value is decoded once and shared between the rows that use it
+        String[] dictionary = new String[dictionarySize + 1];
+        for (int i = 0; i < dictionarySize; i++) {
+            dictionary[i + 1] = new String(data, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+        }
+
+        int codeWidth = buf.get();
+        if (codeWidth != Byte.BYTES && codeWidth != Short.BYTES && codeWidth != Integer.BYTES
+            || (long) codeWidth * rows.length > buf.remaining()) {
+            return false;
+        }
+
+        for (String[] row : rows) {
+            int code = switch (codeWidth) {
+                case Byte.BYTES -> Byte.toUnsignedInt(buf.get());
+                case Short.BYTES -> Short.toUnsignedInt(buf.getShort());
+                default -> buf.getInt();
+            };
+
+            if (code < 0 || code > dictionarySize) {
+                return false;
+            }
+
+            row[col] = dictionary[code];
+        }
+
+        return true;
+    }
+
+    /**
+     * @param dictionarySize the number of distinct values in a column
+     * @return the smallest number of bytes that can hold every code of the column
+     */
+    private static int codeWidth(int dictionarySize) {
+        if (dictionarySize <= 0xFF) {
+            return Byte.BYTES;
+        }
+
+        if (dictionarySize <= 0xFFFF) {
+            return Short.BYTES;
+        }
+
+        return Integer.BYTES;
+    }
+
+    /**
+     * @param file the file to checksum
+     * @return the CRC32C checksum of the file contents
+     */
+    private static long checksum(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+
+            while (position < size) {
+                long length = Math.min(CHECKSUM_CHUNK_SIZE, size - position);
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+                position += length;
+            }
+        }
+
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,25 @@
+package com.andreyprodromov.csv;
+
+
+/**
+ * A single error or warning found while parsing and validating a csv String
+ *
+ * @param rowNumber the 1-based number of the row the diagnostic is about, 0 if it is about the whole csv
+ * @param severity if the diagnostic is an error or a warning
+ * @param message the description of the problem
+ */
+public record CsvDiagnostic(int rowNumber, Severity severity, String message) {
+
+    public enum Severity {
+        ERROR,
+        WARNING
+    }
+
+    /**
+     * @return the diagnostic in the same format {@link CsvMagikk#isValidCsv(String, java.io.OutputStream)} logs it
+     */
+    @Override
+    public String toString() {
+        return severity + ": " + message;
+    }
+}
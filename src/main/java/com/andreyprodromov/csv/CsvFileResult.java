@@ -0,0 +1,33 @@
+package com.andreyprodromov.csv;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+
+/**
+ * The outcome of ingesting a single csv file with {@link CsvBatchIngestor}
+ *
+ * @param file the ingested csv file
+ * @param rowCount the number of rows handed to the {@link CsvRowSink}
+ * @param diagnostics the errors and warnings found while parsing the file
+ * @param aborted true if parsing stopped early because of {@link CsvRecoveryPolicy#ABORT}
+ * @param duration the time spent reading and parsing the file, excluding time spent waiting for resources
+ * @param failure the exception or error that stopped ingestion of the file, {@code null} if there was none
+ */
+public record CsvFileResult(
+        Path file,
+        long rowCount,
+        List<CsvDiagnostic> diagnostics,
+        boolean aborted,
+        Duration duration,
+        Throwable failure
+) {
+
+    /**
+     * @return true if the file could not be read or the sink threw, or if the file has errors
+     */
+    public boolean hasErrors() {
+        return failure != null || diagnostics.stream().anyMatch(d -> d.severity() == CsvDiagnostic.Severity.ERROR);
+    }
+}
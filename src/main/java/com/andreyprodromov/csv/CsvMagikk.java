@@ -1,9 +1,17 @@
 package com.andreyprodromov.csv;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 
 /**
@@ -19,6 +27,7 @@ public class CsvMagikk {
     private final String strDelimiter;
     private final String escapedStrDelimiter;
     private final StringBuilder parserBuilder = new StringBuilder();
+    private final List<String> parserRow = new ArrayList<>();
     private final StringBuilder escapedCellBuilder = new StringBuilder();
     private final StringBuilder toCsvBuilder = new StringBuilder();
     private final StringBuilder toCsvRowBuilder = new StringBuilder();
@@ -202,6 +211,9 @@ public class CsvMagikk {
     }
 
     /**
+     * Rows are always as wide as the header: columns past the header width are dropped and missing ones are
+     * {@code null}. Use {@link #parseAndValidateCsv(String, CsvRecoveryPolicy)} to detect such rows.
+     *
      * @param csv the csv to be parsed
      * @return a {@code String[][]} matrix created from parsing the file
      */
@@ -231,7 +243,10 @@ public class CsvMagikk {
             while (idx < arr.length && (arr[idx] != '\n' || !notInEscapedString)) {
                 // If we reach a delimiter with an even number of quotes, then that means it is the end of a column
                 if (notInEscapedString && arr[idx] == columnDelimiter) {
-                    buffer[bufferIdx] = parserBuilder.toString();
+                    if (bufferIdx < columnsCount) {
+                        buffer[bufferIdx] = parserBuilder.toString();
+                    }
+
                     bufferIdx++;
                     parserBuilder.setLength(0);
                     cellStartedWithRfc4180EscapedString = idx + 1 < arr.length && arr[idx + 1] == stringDelimiter;
@@ -253,8 +268,11 @@ public class CsvMagikk {
                 idx++;
             }
 
-            // Reached end of line, so we add the last column
-            buffer[bufferIdx] = parserBuilder.toString();
+            // Reached end of line, so we add the last column, extra columns past the header width are dropped
+            if (bufferIdx < columnsCount) {
+                buffer[bufferIdx] = parserBuilder.toString();
+            }
+
             parserBuilder.setLength(0);
 
             // Add columns to list, reset buffer index, skip newline
@@ -269,6 +287,270 @@ public class CsvMagikk {
         return rows.toArray(String[][]::new);
     }
 
+    /**
+     * Parses and validates the csv in a single pass, without copying it or counting the header columns beforehand.
+     * Malformed rows never throw, instead they are reported as diagnostics and handled by the recovery policy.
+     * The header row is always kept as the first row, even if it has errors, because it defines the expected width.
+     *
+     * @param csv the csv to be parsed
+     * @param policy what to do with rows that have errors
+     * @return the parsed rows together with the errors and warnings found
+     */
+    public CsvParseResult parseAndValidateCsv(String csv, CsvRecoveryPolicy policy) {
+        List<CsvDiagnostic> diagnostics = new ArrayList<>();
+        List<String[]> rows = new ArrayList<>();
+
+        boolean aborted = parseAndValidateCsv(csv, policy, rows::add, diagnostics);
+
+        return new CsvParseResult(rows.toArray(String[][]::new), diagnostics, aborted);
+    }
+
+    /**
+     * Same as {@link #parseAndValidateCsv(String, CsvRecoveryPolicy)}, but hands every row to the consumer
+     * as soon as it is parsed instead of collecting them.
+     *
+     * @param csv the csv to be parsed
+     * @param policy what to do with rows that have errors
+     * @param rowConsumer receives the rows after the recovery policy has been applied
+     * @param diagnostics the list where errors and warnings are added
+     * @return true if parsing stopped early because of {@link CsvRecoveryPolicy#ABORT}
+     */
+    boolean parseAndValidateCsv(
+            String csv,
+            CsvRecoveryPolicy policy,
+            Consumer<String[]> rowConsumer,
+            List<CsvDiagnostic> diagnostics
+    ) {
+        if (csv == null) {
+            diagnostics.add(error(0, "csv is null"));
+            return false;
+        }
+
+        if (csv.isBlank()) {
+            diagnostics.add(error(0, "csv is blank"));
+            return false;
+        }
+
+        return parseAndValidateCsv(new CharCursor(csv), policy, rowConsumer, diagnostics, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Same as {@link #parseAndValidateCsv(String, CsvRecoveryPolicy, Consumer, List)}, but reads the csv as it goes,
+     * so only the row being parsed is held in memory.
+     *
+     * @param csv the csv to be parsed, not closed by this method
+     * @param policy what to do with rows that have errors
+     * @param rowConsumer receives the rows after the recovery policy has been applied
+     * @param diagnostics the list where errors and warnings are added
+     * @param maxRowChars the maximum number of characters in a single row
+     * @return true if parsing stopped early because of {@link CsvRecoveryPolicy#ABORT}
+     * @throws IOException if the csv cannot be read
+     * @throws IllegalStateException if a row is longer than {@code maxRowChars}
+     */
+    boolean parseAndValidateCsv(
+            Reader csv,
+            CsvRecoveryPolicy policy,
+            Consumer<String[]> rowConsumer,
+            List<CsvDiagnostic> diagnostics,
+            int maxRowChars
+    ) throws IOException {
+        try {
+            CharCursor cursor = new CharCursor(csv);
+            if (cursor.peek() == CharCursor.EOF) {
+                diagnostics.add(error(0, "csv is blank"));
+                return false;
+            }
+
+            return parseAndValidateCsv(cursor, policy, rowConsumer, diagnostics, maxRowChars);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @param cursor the csv to be parsed, positioned at its first character
+     * @param policy what to do with rows that have errors
+     * @param rowConsumer receives the rows after the recovery policy has been applied
+     * @param diagnostics the list where errors and warnings are added
+     * @param maxRowChars the maximum number of characters in a single row
+     * @return true if parsing stopped early because of {@link CsvRecoveryPolicy#ABORT}
+     */
+    private boolean parseAndValidateCsv(
+            CharCursor cursor,
+            CsvRecoveryPolicy policy,
+            Consumer<String[]> rowConsumer,
+            List<CsvDiagnostic> diagnostics,
+            int maxRowChars
+    ) {
+        int rowNumber = 1;
+        int columnsCount = -1; // Taken from the header row once it is parsed
+        boolean aborted = false;
+
+        while (cursor.peek() != CharCursor.EOF) {
+            int diagnosticsBefore = diagnostics.size();
+            int rowChars = 0;
+            boolean notInEscapedString = true;
+            boolean cellStartedWithRfc4180EscapedString = cursor.peek() == stringDelimiter;
+            boolean escapedStringClosed = false;
+            boolean cellErrorReported = false; // Quote errors are reported once per cell, not once per character
+
+            parserRow.clear();
+            parserBuilder.setLength(0);
+
+            while (cursor.peek() != CharCursor.EOF) {
+                char c = (char) cursor.peek();
+
+                if (notInEscapedString && c == '\n') {
+                    break;
+                }
+
+                if (++rowChars > maxRowChars) {
+                    throw new IllegalStateException(
+                            String.format("row number %d is longer than %d characters", rowNumber, maxRowChars)
+                    );
+                }
+
+                if (c == '\r' && cursor.peekNext() != '\n') {
+                    diagnostics.add(warning(rowNumber, "row number %d uses CR without LF", rowNumber));
+                }
+
+                if (notInEscapedString && c == columnDelimiter) {
+                    // End of column, check if next one is RFC4180 escaped
+                    parserRow.add(parserBuilder.toString());
+                    parserBuilder.setLength(0);
+                    cellStartedWithRfc4180EscapedString = cursor.peekNext() == stringDelimiter;
+                    escapedStringClosed = false;
+                    cellErrorReported = false;
+                } else if (!notInEscapedString) {
+                    if (c == stringDelimiter) {
+                        if (cursor.peekNext() == stringDelimiter) {
+                            parserBuilder.append(stringDelimiter);
+                            cursor.advance(); // Skip next quote
+                        } else {
+                            notInEscapedString = true;
+                            escapedStringClosed = true;
+                        }
+                    } else {
+                        parserBuilder.append(c);
+                    }
+                } else if (c == stringDelimiter && cellStartedWithRfc4180EscapedString && !escapedStringClosed) {
+                    notInEscapedString = false;
+                } else if (c != '\r') {
+                    // Anything else outside of quotes is kept as is, so stray quotes don't misalign the columns
+                    if (!cellErrorReported && escapedStringClosed) {
+                        diagnostics.add(error(
+                                rowNumber,
+                                "row number %d has a column that started with opening quote, but didn't use closing quote",
+                                rowNumber
+                        ));
+                        cellErrorReported = true;
+                    } else if (!cellErrorReported && c == stringDelimiter) {
+                        diagnostics.add(error(
+                                rowNumber,
+                                "row number %d appears to use quotes without enclosing field in quotes",
+                                rowNumber
+                        ));
+                        cellErrorReported = true;
+                    }
+
+                    parserBuilder.append(c);
+                }
+
+                cursor.advance();
+            }
+
+            // Reached end of line, so we add the last column
+            parserRow.add(parserBuilder.toString());
+            parserBuilder.setLength(0);
+
+            if (!notInEscapedString) {
+                diagnostics.add(error(
+                        rowNumber,
+                        "last column in row number %d does not have properly escaped quotes",
+                        rowNumber
+                ));
+            }
+
+            boolean isHeader = columnsCount == -1;
+            if (isHeader) {
+                columnsCount = parserRow.size();
+            } else if (parserRow.size() != columnsCount) {
+                diagnostics.add(error(
+                        rowNumber,
+                        "row number %d has different number of columns (Expected: %d, Actual: %d)",
+                        rowNumber,
+                        columnsCount,
+                        parserRow.size()
+                ));
+            }
+
+            boolean rowHasErrors = false;
+            for (int i = diagnosticsBefore; i < diagnostics.size(); i++) {
+                if (diagnostics.get(i).severity() == CsvDiagnostic.Severity.ERROR) {
+                    rowHasErrors = true;
+                    break;
+                }
+            }
+
+            // The header is always kept, because its width is used for every other row
+            if (!rowHasErrors || isHeader) {
+                rowConsumer.accept(parserRow.toArray(String[]::new));
+            } else if (policy == CsvRecoveryPolicy.PAD_OR_TRUNCATE) {
+                String[] row = new String[columnsCount];
+                for (int col = 0; col < columnsCount; col++) {
+                    row[col] = col < parserRow.size() ? parserRow.get(col) : "";
+                }
+
+                rowConsumer.accept(row);
+            }
+
+            if (rowHasErrors && policy == CsvRecoveryPolicy.ABORT) {
+                aborted = true;
+                break;
+            }
+
+            // Prepare for next csv row, skip newline
+            cursor.advance();
+            rowNumber++;
+
+            if (cursor.peek() == '\r' || cursor.peek() == '\n') {
+                diagnostics.add(warning(rowNumber, "row number %d appears to have more than one newline", rowNumber));
+            }
+        }
+
+        return aborted;
+    }
+
+    /**
+     * Parses a csv file, reusing the binary cache when it is still up-to-date with the file.
+     * The cache is (re)created whenever it is missing or stale, see {@link CsvCache}.
+     * Files that are too large to be cached are parsed on every call.
+     *
+     * @param csv the csv file to be parsed
+     * @param cacheFile the file where the parsed result is cached
+     * @return a {@code String[][]} matrix created from parsing the file
+     * @throws IOException if the csv file or the cache cannot be read or written
+     */
+    public String[][] parseCsv(Path csv, Path cacheFile) throws IOException {
+        String[][] cached = CsvCache.load(csv, cacheFile);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Fingerprint the exact bytes that are parsed, reading the modified time first so later changes are detected
+        long lastModified = Files.getLastModifiedTime(csv).toMillis();
+        byte[] contents = Files.readAllBytes(csv);
+        String[][] parsed = parseCsv(StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(contents)).toString());
+
+        try {
+            CsvCache.save(parsed, CsvCache.Fingerprint.of(contents, lastModified), cacheFile);
+        } catch (IllegalArgumentException e) {
+            // Too large to be cached, the parsed result is still valid
+        }
+
+        return parsed;
+    }
+
     /**
      * @param csv the csv matrix to be parsed
      * @return the {@code String} csv created from parsing the csv matrix
@@ -358,6 +640,99 @@ public class CsvMagikk {
     }
 
 
+    /**
+     * Reads a csv String or Reader forward, one character at a time with one character of lookahead
+     */
+    private static final class CharCursor {
+
+        static final int EOF = -1;
+        private static final int BUFFER_SIZE = 8192;
+
+        private final String string;
+        private final Reader reader;
+        private final char[] buffer;
+        private int position;
+        private int limit;
+        private boolean endOfReader;
+
+        CharCursor(String csv) {
+            this.string = csv;
+            this.reader = null;
+            this.buffer = null;
+            this.limit = csv.length();
+        }
+
+        CharCursor(Reader csv) {
+            this.string = null;
+            this.reader = csv;
+            this.buffer = new char[BUFFER_SIZE];
+        }
+
+        /**
+         * @return the current character, or {@link #EOF} if there are no more
+         */
+        int peek() {
+            return charAt(0);
+        }
+
+        /**
+         * @return the character after the current one, or {@link #EOF} if there is none
+         */
+        int peekNext() {
+            return charAt(1);
+        }
+
+        void advance() {
+            if (position < limit) {
+                position++;
+            }
+        }
+
+        /**
+         * @param offset how far ahead of the current character to look, at most 1
+         * @return the character at the offset, or {@link #EOF} if there is none
+         */
+        private int charAt(int offset) {
+            if (string != null) {
+                return position + offset < limit ? string.charAt(position + offset) : EOF;
+            }
+
+            while (position + offset >= limit && !endOfReader) {
+                fill();
+            }
+
+            return position + offset < limit ? buffer[position + offset] : EOF;
+        }
+
+        /**
+         * Moves the unread characters to the start of the buffer and reads more after them
+         */
+        private void fill() {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+
+            try {
+                int read = reader.read(buffer, limit, buffer.length - limit);
+                if (read == -1) {
+                    endOfReader = true;
+                } else {
+                    limit += read;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static CsvDiagnostic error(int rowNumber, String format, Object... args) {
+        return new CsvDiagnostic(rowNumber, CsvDiagnostic.Severity.ERROR, String.format(format, args));
+    }
+
+    private static CsvDiagnostic warning(int rowNumber, String format, Object... args) {
+        return new CsvDiagnostic(rowNumber, CsvDiagnostic.Severity.WARNING, String.format(format, args));
+    }
+
     /**
      * @param arr the csv String as an array
      * @return the number of columns the csv file has
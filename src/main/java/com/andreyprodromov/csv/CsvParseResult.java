@@ -0,0 +1,36 @@
+package com.andreyprodromov.csv;
+
+import java.util.List;
+
+
+/**
+ * The outcome of parsing and validating a csv String in a single pass
+ *
+ * @param rows the parsed rows, after the {@link CsvRecoveryPolicy} has been applied
+ * @param diagnostics the errors and warnings found, in the order they appear in the csv
+ * @param aborted true if parsing stopped early because of {@link CsvRecoveryPolicy#ABORT}
+ */
+public record CsvParseResult(String[][] rows, List<CsvDiagnostic> diagnostics, boolean aborted) {
+
+    /**
+     * @return true if at least one error was found
+     */
+    public boolean hasErrors() {
+        return diagnostics.stream().anyMatch(d -> d.severity() == CsvDiagnostic.Severity.ERROR);
+    }
+
+    /**
+     * @return true if at least one warning was found
+     */
+    public boolean hasWarnings() {
+        return diagnostics.stream().anyMatch(d -> d.severity() == CsvDiagnostic.Severity.WARNING);
+    }
+
+    /**
+     * @param treatWarningsAsErrors if warnings should be treated as errors
+     * @return true if the csv is RFC 4180 compliant, same as {@link CsvMagikk#isValidCsv(String, boolean)}
+     */
+    public boolean isValid(boolean treatWarningsAsErrors) {
+        return !(hasErrors() || (treatWarningsAsErrors && hasWarnings()));
+    }
+}
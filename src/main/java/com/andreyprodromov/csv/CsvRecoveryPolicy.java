@@ -0,0 +1,24 @@
+package com.andreyprodromov.csv;
+
+
+/**
+ * Decides what happens to a malformed row when parsing and validating in a single pass.
+ * The header row is always kept, it only stops parsing under {@link #ABORT}.
+ */
+public enum CsvRecoveryPolicy {
+
+    /**
+     * Leave the malformed row out of the result and continue with the next row
+     */
+    SKIP_ROW,
+
+    /**
+     * Keep the malformed row, padding it with empty cells or truncating it to the header width
+     */
+    PAD_OR_TRUNCATE,
+
+    /**
+     * Stop parsing at the first malformed row, the result contains only the rows before it
+     */
+    ABORT
+}
@@ -0,0 +1,19 @@
+package com.andreyprodromov.csv;
+
+import java.nio.file.Path;
+
+
+/**
+ * Receives the rows of csv files as they are parsed by {@link CsvBatchIngestor}.
+ * Rows of different files are delivered from different threads at the same time, so implementations must be thread-safe.
+ * Rows of a single file are delivered in order from one thread.
+ */
+@FunctionalInterface
+public interface CsvRowSink {
+
+    /**
+     * @param file the csv file the row belongs to
+     * @param row the parsed row, after the {@link CsvRecoveryPolicy} has been applied
+     */
+    void accept(Path file, String[] row);
+}
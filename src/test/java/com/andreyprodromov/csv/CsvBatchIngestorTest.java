@@ -0,0 +1,234 @@
+package com.andreyprodromov.csv;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvBatchIngestorTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void ingestStreamsEveryRowToSinkTest() throws IOException, InterruptedException {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Path file = dir.resolve("data" + i + ".csv");
+            Files.writeString(file, "id,name\r\n1,John Doe\r\n2,\"Doe, Jane\"\r\n");
+            files.add(file);
+        }
+
+        Map<Path, List<String[]>> received = new ConcurrentHashMap<>();
+        CsvRowSink sink = (file, row) -> received.computeIfAbsent(file, f -> new ArrayList<>()).add(row);
+
+        List<CsvFileResult> results = new CsvBatchIngestor(4, 1024).ingest(files, CsvRecoveryPolicy.ABORT, sink);
+
+        assertEquals(files.size(), results.size(), "Did not return one result per file");
+        for (int i = 0; i < files.size(); i++) {
+            CsvFileResult result = results.get(i);
+
+            assertEquals(files.get(i), result.file(), "Results are not in the order of the files");
+            assertEquals(3, result.rowCount(), "Reported wrong row count");
+            assertFalse(result.hasErrors(), "Reported errors on valid csv");
+            assertEquals("Doe, Jane", received.get(files.get(i)).get(2)[1], "Sink did not receive parsed rows");
+        }
+    }
+
+    @Test
+    void ingestReportsMalformedAndMissingFilesTest() throws IOException, InterruptedException {
+        Path malformed = dir.resolve("malformed.csv");
+        Path missing = dir.resolve("missing.csv");
+        Files.writeString(malformed, "id,name\r\n1,John Doe,extra\r\n2,Jane Doe\r\n");
+
+        List<CsvFileResult> results = new CsvBatchIngestor(2, 1024)
+                .ingest(List.of(malformed, missing), CsvRecoveryPolicy.SKIP_ROW, (file, row) -> { });
+
+        assertEquals(2, results.get(0).rowCount(), "Did not skip malformed row");
+        assertEquals(1, results.get(0).diagnostics().size(), "Did not report malformed row");
+        assertTrue(results.get(0).hasErrors(), "Did not report malformed file as having errors");
+
+        assertInstanceOf(NoSuchFileException.class, results.get(1).failure(), "Did not report missing file");
+        assertTrue(results.get(1).hasErrors(), "Did not report missing file as having errors");
+    }
+
+    @Test
+    void ingestRecordsSinkFailureTest() throws IOException, InterruptedException {
+        Path file = dir.resolve("data.csv");
+        Files.writeString(file, "id,name\r\n1,John Doe\r\n");
+
+        List<CsvFileResult> results = new CsvBatchIngestor(1, 1024).ingest(
+                List.of(file),
+                CsvRecoveryPolicy.ABORT,
+                (f, row) -> {
+                    throw new IllegalArgumentException("sink is full");
+                }
+        );
+
+        assertInstanceOf(IllegalArgumentException.class, results.get(0).failure(), "Did not record sink failure");
+    }
+
+    @Test
+    void ingestStaysWithinInFlightBytesBudgetTest() throws IOException, InterruptedException {
+        String csv = "id\r\n1\r\n2\r\n3\r\nlast\r\n";
+
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Path file = dir.resolve("data" + i + ".csv");
+            Files.writeString(file, csv);
+            files.add(file);
+        }
+
+        // Budget fits only one file at a time, even though four could run concurrently
+        Set<Path> active = ConcurrentHashMap.newKeySet();
+        AtomicInteger maxActive = new AtomicInteger();
+        CsvRowSink sink = (file, row) -> {
+            if (row[0].equals("id")) {
+                active.add(file);
+                maxActive.accumulateAndGet(active.size(), Math::max);
+                Thread.yield();
+            } else if (row[0].equals("last")) {
+                active.remove(file);
+            }
+        };
+
+        long budget = CsvBatchIngestor.estimateHeapBytes(csv.length()) + 1;
+        List<CsvFileResult> results = new CsvBatchIngestor(4, budget).ingest(files, CsvRecoveryPolicy.ABORT, sink);
+
+        assertEquals(1, maxActive.get(), "Parsed more files at once than the bytes budget allows");
+        assertTrue(results.stream().noneMatch(CsvFileResult::hasErrors), "Reported errors on valid csv");
+    }
+
+    @Test
+    void ingestRunsFilesConcurrentlyWithinBudgetTest() throws IOException, InterruptedException {
+        String csv = "id\r\n1\r\n";
+        Path first = dir.resolve("first.csv");
+        Path second = dir.resolve("second.csv");
+        Files.writeString(first, csv);
+        Files.writeString(second, csv);
+
+        // Each file waits for the other one to start, which only happens if both run at the same time
+        CountDownLatch started = new CountDownLatch(2);
+        CsvRowSink sink = (file, row) -> {
+            if (row[0].equals("id")) {
+                started.countDown();
+                try {
+                    if (!started.await(10, TimeUnit.SECONDS)) {
+                        throw new IllegalStateException("files did not run concurrently");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+
+        long budget = 2 * CsvBatchIngestor.estimateHeapBytes(csv.length());
+        List<CsvFileResult> results = new CsvBatchIngestor(4, budget)
+                .ingest(List.of(first, second), CsvRecoveryPolicy.ABORT, sink);
+
+        assertTrue(results.stream().noneMatch(CsvFileResult::hasErrors), "Budget for two files ran them one at a time");
+    }
+
+    @Test
+    void ingestLargeFileBetweenSmallFilesTest() throws IOException, InterruptedException {
+        String small = "id\r\n1\r\nlast\r\n";
+        String large = "id\r\n" + "1\r\n".repeat(10_000) + "last\r\n";
+
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            Path file = dir.resolve("data" + i + ".csv");
+            Files.writeString(file, i == 5 ? large : small);
+            files.add(file);
+        }
+
+        // The large file needs the whole budget, so it must run alone and not wait behind the small ones forever
+        Path largeFile = files.get(5);
+        Set<Path> active = ConcurrentHashMap.newKeySet();
+        AtomicInteger activeWithLarge = new AtomicInteger();
+        CsvRowSink sink = (file, row) -> {
+            if (row[0].equals("id")) {
+                active.add(file);
+            } else if (row[0].equals("last")) {
+                active.remove(file);
+            }
+
+            if (active.contains(largeFile)) {
+                activeWithLarge.accumulateAndGet(active.size(), Math::max);
+            }
+        };
+
+        // The budget fits several small files, but the large one only on its own
+        long budget = CsvBatchIngestor.estimateHeapBytes(large.length());
+        List<CsvFileResult> results = new CsvBatchIngestor(4, budget).ingest(files, CsvRecoveryPolicy.ABORT, sink);
+
+        assertEquals(10_002, results.get(5).rowCount(), "Did not ingest the large file");
+        assertEquals(1, activeWithLarge.get(), "Parsed other files together with the large file");
+        assertTrue(results.stream().noneMatch(CsvFileResult::hasErrors), "Reported errors on valid csv");
+    }
+
+    @Test
+    void ingestFailsFileWithTooLongRowTest() throws IOException, InterruptedException {
+        Path tooLong = dir.resolve("too-long.csv");
+        Path valid = dir.resolve("valid.csv");
+        Files.writeString(tooLong, "id\r\n\"" + "x".repeat(CsvBatchIngestor.MAX_ROW_CHARS) + "\r\n");
+        Files.writeString(valid, "id\r\n1\r\n");
+
+        List<CsvFileResult> results = new CsvBatchIngestor(2, 1024 * 1024)
+                .ingest(List.of(tooLong, valid), CsvRecoveryPolicy.SKIP_ROW, (file, row) -> { });
+
+        assertInstanceOf(IllegalStateException.class, results.get(0).failure(), "Did not fail file with too long row");
+        assertEquals(1, results.get(0).rowCount(), "Did not stream rows before the too long one");
+        assertEquals(2, results.get(1).rowCount(), "Too long row affected other files");
+    }
+
+    @Test
+    void ingestRecordsErrorWithoutLosingOtherResultsTest() throws IOException, InterruptedException {
+        Path crashing = dir.resolve("crashing.csv");
+        Path valid = dir.resolve("valid.csv");
+        Files.writeString(crashing, "id\r\n1\r\n");
+        Files.writeString(valid, "id\r\n1\r\n");
+
+        List<CsvFileResult> results = new CsvBatchIngestor(2, 1024 * 1024).ingest(
+                List.of(crashing, valid),
+                CsvRecoveryPolicy.ABORT,
+                (file, row) -> {
+                    if (file.equals(crashing)) {
+                        throw new Error("sink crashed");
+                    }
+                }
+        );
+
+        assertEquals(crashing, results.get(0).file(), "Did not keep the failed file in its place");
+        assertInstanceOf(Error.class, results.get(0).failure(), "Did not record Error as failure");
+        assertEquals(2, results.get(1).rowCount(), "Lost results of other files");
+        assertFalse(results.get(1).hasErrors(), "Error affected other files");
+    }
+
+    @Test
+    void ingestFileLargerThanBudgetTest() throws IOException, InterruptedException {
+        Path file = dir.resolve("data.csv");
+        Files.writeString(file, "id,name\r\n1,John Doe\r\n2,Jane Doe\r\n");
+
+        List<CsvFileResult> results = new CsvBatchIngestor(1, 4).ingest(
+                List.of(file),
+                CsvRecoveryPolicy.ABORT,
+                (f, row) -> { }
+        );
+
+        assertEquals(3, results.get(0).rowCount(), "Did not ingest file larger than the budget");
+    }
+}
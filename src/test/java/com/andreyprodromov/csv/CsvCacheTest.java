@@ -0,0 +1,171 @@
+package com.andreyprodromov.csv;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvCacheTest {
+
+    CsvMagikk csvMagikk = new CsvMagikk();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void loadReturnsSameMatrixAsParseTest() throws IOException {
+        String csv = """
+            id,name,location
+            1,John Doe,New York
+            2,James Doe,\"\"\"New\"\" York\"
+            3,Mary Doe,\"New, York\"
+            4,Jack Doe,\"\"\"New\"\", York\"
+            5,\"\"\"Jane Doe\",\",\"\"New\"\", York\"
+            6,\"\"\"Jim Doe\",\",\"\"New\"\",\r\n York\"
+            7,J\u00fcrgen Doe,New York
+            """;
+
+        Path source = dir.resolve("data.csv");
+        Path cache = dir.resolve("data.csv.cache");
+        Files.writeString(source, csv);
+
+        String[][] expected = csvMagikk.parseCsv(csv);
+        CsvCache.save(expected, source, cache);
+
+        assertArrayEquals(expected, CsvCache.load(source, cache), "Cached matrix differs from parsed matrix");
+    }
+
+    @Test
+    void loadKeepsNullCellsTest() throws IOException {
+        Path source = dir.resolve("data.csv");
+        Path cache = dir.resolve("data.csv.cache");
+        Files.writeString(source, "a,b\r\n1,\r\n");
+
+        String[][] rows = {{"a", "b"}, {"1", null}, {"1", ""}};
+        CsvCache.save(rows, source, cache);
+
+        assertArrayEquals(rows, CsvCache.load(source, cache), "Null cells were not restored properly");
+    }
+
+    @Test
+    void loadWithManyDistinctValuesTest() throws IOException {
+        Path source = dir.resolve("data.csv");
+        Path cache = dir.resolve("data.csv.cache");
+        Files.writeString(source, "id\r\n");
+
+        // More than 0xFFFF distinct values forces the widest code width
+        String[][] rows = new String[70_000][1];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i][0] = String.valueOf(i);
+        }
+
+        CsvCache.save(rows, source, cache);
+
+        assertArrayEquals(rows, CsvCache.load(source, cache), "Wide dictionary was not restored properly");
+    }
+
+    @Test
+    void loadReturnsNullWhenSourceChangedTest() throws IOException {
+        Path source = dir.resolve("data.csv");
+        Path cache = dir.resolve("data.csv.cache");
+        Files.writeString(source, "a,b\r\n1,2\r\n");
+        FileTime modified = Files.getLastModifiedTime(source);
+
+        CsvCache.save(csvMagikk.parseCsv(Files.readString(source)), source, cache);
+
+        // Same size and modification time, only the checksum can tell the difference
+        Files.writeString(source, "a,b\r\n3,4\r\n");
+        Files.setLastModifiedTime(source, modified);
+
+        assertNull(CsvCache.load(source, cache), "Did not invalidate cache when source contents changed");
+    }
+
+    @Test
+    void loadReturnsNullWhenCacheIsMissingOrCorruptTest() throws IOException {
+        Path source = dir.resolve("data.csv");
+        Path cache = dir.resolve("data.csv.cache");
+        Files.writeString(source, "a,b\r\n1,2\r\n");
+
+        assertNull(CsvCache.load(source, cache), "Did not return null for missing cache");
+
+        CsvCache.save(csvMagikk.parseCsv(Files.readString(source)), source, cache);
+        byte[] bytes = Files.readAllBytes(cache);
+        Files.write(cache, Arrays.copyOf(bytes, bytes.length - 3));
+
+        assertNull(CsvCache.load(source, cache), "Did not return null for truncated cache");
+    }
+
+    @Test
+    void loadReturnsNullWhenCountsAreCorruptTest() throws IOException {
+        Path source = dir.resolve("data.csv");
+        Path cache = dir.resolve("data.csv.cache");
+        Files.writeString(source, "a,b\r\n1,2\r\n");
+        CsvCache.save(csvMagikk.parseCsv(Files.readString(source)), source, cache);
+        byte[] valid = Files.readAllBytes(cache);
+
+        // Row count is at offset 32, dictionary size of the first column at offset 40
+        byte[] hugeRowCount = valid.clone();
+        ByteBuffer.wrap(hugeRowCount).putInt(32, Integer.MAX_VALUE);
+        Files.write(cache, hugeRowCount);
+        assertNull(CsvCache.load(source, cache), "Did not return null for corrupt row count");
+
+        byte[] negativeDictionarySize = valid.clone();
+        ByteBuffer.wrap(negativeDictionarySize).putInt(40, -1);
+        Files.write(cache, negativeDictionarySize);
+        assertNull(CsvCache.load(source, cache), "Did not return null for corrupt dictionary size");
+
+        // Any other single corrupt byte must not escape as an exception either
+        for (int i = 32; i < valid.length; i++) {
+            byte[] corrupt = valid.clone();
+            corrupt[i] = (byte) 0xFF;
+            Files.write(cache, corrupt);
+
+            int offset = i;
+            assertDoesNotThrow(() -> CsvCache.load(source, cache), "Corrupt byte at offset " + offset + " escaped");
+        }
+    }
+
+    @Test
+    void saveWithFingerprintOfParsedContentsTest() throws IOException {
+        Path source = dir.resolve("data.csv");
+        Path cache = dir.resolve("data.csv.cache");
+        Files.writeString(source, "a,b\r\n1,2\r\n");
+
+        long lastModified = Files.getLastModifiedTime(source).toMillis();
+        byte[] contents = Files.readAllBytes(source);
+        CsvCache.Fingerprint fingerprint = CsvCache.Fingerprint.of(contents, lastModified);
+
+        assertEquals(CsvCache.Fingerprint.of(source), fingerprint, "Fingerprint of contents differs from file");
+
+        // Source changes after it was read, the cache must describe the old contents
+        Files.writeString(source, "a,b\r\n3,4\r\n");
+        Files.setLastModifiedTime(source, FileTime.fromMillis(lastModified));
+        CsvCache.save(csvMagikk.parseCsv(new String(contents, StandardCharsets.UTF_8)), fingerprint, cache);
+
+        assertNull(CsvCache.load(source, cache), "Cached old rows with the fingerprint of the new contents");
+    }
+
+    @Test
+    void parseCsvFileRefreshesStaleCacheTest() throws IOException {
+        Path source = dir.resolve("data.csv");
+        Path cache = dir.resolve("data.csv.cache");
+
+        Files.writeString(source, "a,b\r\n1,2\r\n");
+        assertEquals("2", csvMagikk.parseCsv(source, cache)[1][1], "Couldn't parse csv file");
+        assertTrue(Files.exists(cache), "Did not create cache file");
+
+        Files.writeString(source, "a,b\r\n1,2\r\n3,4\r\n");
+        String[][] reparsed = csvMagikk.parseCsv(source, cache);
+
+        assertEquals(3, reparsed.length, "Used stale cache after source changed");
+        assertArrayEquals(reparsed, CsvCache.load(source, cache), "Did not refresh stale cache");
+    }
+}
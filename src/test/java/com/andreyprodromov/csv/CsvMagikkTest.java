@@ -2,6 +2,10 @@ package com.andreyprodromov.csv;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -191,6 +195,14 @@ class CsvMagikkTest {
         assertEquals(",\"New\",\r\n York", extractedCsv[6][2], "Couldn't extract sixth data row properly");
     }
 
+    @Test
+    void parseWhenRowsHaveDifferentNumberOfColumnsTest() {
+        String[][] extractedCsv = csvMagikk.parseCsv("a,b\r\n1,2,3\r\n4\r\n");
+
+        assertArrayEquals(new String[]{"1", "2"}, extractedCsv[1], "Did not drop columns past the header width");
+        assertArrayEquals(new String[]{"4", null}, extractedCsv[2], "Did not leave missing columns empty");
+    }
+
     @Test
     void validationWhenCSVIsValidTest() {
         String csv = "Name,Age,City\r\n" +
@@ -270,6 +282,178 @@ class CsvMagikkTest {
         assertFalse(validationResult, "Did not return false when having improperly escaped cell");
     }
 
+    @Test
+    void parseAndValidateWhenCSVIsValidTest() {
+        String csv = """
+            id,name,location
+            1,John Doe,New York
+            2,James Doe,\"\"\"New\"\" York\"
+            3,Mary Doe,\"New, York\"
+            4,Jack Doe,\"\"\"New\"\", York\"
+            5,\"\"\"Jane Doe\",\",\"\"New\"\", York\"
+            6,\"\"\"Jim Doe\",\",\"\"New\"\",\r\n York\"
+            """;
+
+        CsvParseResult result = csvMagikk.parseAndValidateCsv(csv, CsvRecoveryPolicy.ABORT);
+
+        assertTrue(result.isValid(true), "Reported diagnostics on valid csv: " + result.diagnostics());
+        assertFalse(result.aborted(), "Aborted on valid csv");
+        assertArrayEquals(csvMagikk.parseCsv(csv), result.rows(), "Did not parse the same rows as parseCsv");
+    }
+
+    @Test
+    void parseAndValidateSkipsRowsWithDifferentColumnCountTest() {
+        String csv = "id,name,location\r\n" +
+                     "1,John Doe,New York,extra\r\n" +
+                     "2,Jane Doe\r\n" +
+                     "3,Mary Doe,Chicago\r\n";
+
+        CsvParseResult result = csvMagikk.parseAndValidateCsv(csv, CsvRecoveryPolicy.SKIP_ROW);
+
+        assertEquals(2, result.rows().length, "Did not skip malformed rows");
+        assertArrayEquals(new String[]{"3", "Mary Doe", "Chicago"}, result.rows()[1], "Misaligned rows after skipping");
+        assertEquals(2, result.diagnostics().size(), "Did not report every malformed row");
+        assertEquals(2, result.diagnostics().get(0).rowNumber(), "Reported wrong row number");
+        assertEquals(3, result.diagnostics().get(1).rowNumber(), "Reported wrong row number");
+        assertFalse(result.isValid(false), "Did not report malformed rows as errors");
+    }
+
+    @Test
+    void parseAndValidatePadsAndTruncatesToHeaderWidthTest() {
+        String csv = "id,name,location\r\n" +
+                     "1,John Doe,New York,extra\r\n" +
+                     "2,Jane Doe\r\n";
+
+        CsvParseResult result = csvMagikk.parseAndValidateCsv(csv, CsvRecoveryPolicy.PAD_OR_TRUNCATE);
+
+        assertEquals(3, result.rows().length, "Did not keep malformed rows");
+        assertArrayEquals(new String[]{"1", "John Doe", "New York"}, result.rows()[1], "Did not truncate long row");
+        assertArrayEquals(new String[]{"2", "Jane Doe", ""}, result.rows()[2], "Did not pad short row");
+    }
+
+    @Test
+    void parseAndValidateAbortsOnFirstMalformedRowTest() {
+        String csv = "id,name,location\r\n" +
+                     "1,John Doe,New York\r\n" +
+                     "2,Jane Doe\r\n" +
+                     "3,Mary Doe,Chicago,extra\r\n";
+
+        CsvParseResult result = csvMagikk.parseAndValidateCsv(csv, CsvRecoveryPolicy.ABORT);
+
+        assertTrue(result.aborted(), "Did not abort on malformed row");
+        assertEquals(2, result.rows().length, "Did not keep rows before the malformed row");
+        assertEquals(1, result.diagnostics().size(), "Continued validating after aborting");
+    }
+
+    @Test
+    void parseAndValidateReportsStrayQuotesTest() {
+        String csv = "id,name,location\r\n" +
+                     "1,James \"Jim\" Doe,New York\r\n" +
+                     "2,\"Jane\" Doe,Chicago\r\n";
+
+        CsvParseResult result = csvMagikk.parseAndValidateCsv(csv, CsvRecoveryPolicy.PAD_OR_TRUNCATE);
+
+        assertTrue(result.hasErrors(), "Did not report stray quotes");
+        assertEquals("James \"Jim\" Doe", result.rows()[1][1], "Did not keep stray quotes as is");
+        assertEquals("Jane Doe", result.rows()[2][1], "Did not keep text after closing quote");
+        assertEquals("New York", result.rows()[1][2], "Stray quotes misaligned the columns");
+    }
+
+    @Test
+    void parseAndValidateReportsStrayQuotesOncePerCellTest() {
+        String csv = "id,name,location\r\n" +
+                     "1,\"Jane\" Doe Smith,\"New\" York\r\n" +
+                     "2,Jim \"The\" \"Doe\",Chicago\r\n";
+
+        CsvParseResult result = csvMagikk.parseAndValidateCsv(csv, CsvRecoveryPolicy.PAD_OR_TRUNCATE);
+
+        assertEquals(3, result.diagnostics().size(), "Did not report stray quotes exactly once per cell");
+        assertEquals(2, result.diagnostics().get(0).rowNumber(), "Reported wrong row number");
+        assertEquals(2, result.diagnostics().get(1).rowNumber(), "Reported wrong row number");
+        assertEquals(3, result.diagnostics().get(2).rowNumber(), "Reported wrong row number");
+    }
+
+    @Test
+    void parseAndValidateKeepsMalformedHeaderTest() {
+        String csv = "id,na\"me\r\n" +
+                     "1,2\r\n";
+
+        CsvParseResult skipped = csvMagikk.parseAndValidateCsv(csv, CsvRecoveryPolicy.SKIP_ROW);
+
+        assertEquals(2, skipped.rows().length, "Did not keep malformed header");
+        assertArrayEquals(new String[]{"id", "na\"me"}, skipped.rows()[0], "Header is not the first row");
+        assertTrue(skipped.hasErrors(), "Did not report malformed header");
+
+        CsvParseResult aborted = csvMagikk.parseAndValidateCsv(csv, CsvRecoveryPolicy.ABORT);
+
+        assertTrue(aborted.aborted(), "Did not abort on malformed header");
+        assertEquals(1, aborted.rows().length, "Did not keep malformed header before aborting");
+    }
+
+    @Test
+    void parseAndValidateReportsUnclosedQuoteTest() {
+        String csv = "id,name\r\n" +
+                     "1,\"John Doe\r\n" +
+                     "2,Jane Doe\r\n";
+
+        CsvParseResult result = csvMagikk.parseAndValidateCsv(csv, CsvRecoveryPolicy.SKIP_ROW);
+
+        assertEquals(1, result.rows().length, "Kept row with unclosed quote");
+        assertTrue(result.hasErrors(), "Did not report unclosed quote");
+    }
+
+    @Test
+    void parseAndValidateFromReaderTest() throws IOException {
+        StringBuilder csv = new StringBuilder("id,name,location\r\n");
+        for (int i = 0; i < 2_000; i++) {
+            csv.append(i).append(",\"\"\"Jim Doe\",\",\"\"New\"\",\r\n York\"\r\n")
+               .append(i).append(",Jane \"Doe\",Chicago,extra\r");
+        }
+
+        // Hands out a few characters per read, so rows and escaped quotes span many buffer refills
+        Reader reader = new StringReader(csv.toString()) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, 3));
+            }
+        };
+
+        List<String[]> rows = new ArrayList<>();
+        List<CsvDiagnostic> diagnostics = new ArrayList<>();
+        boolean aborted = csvMagikk.parseAndValidateCsv(
+                reader,
+                CsvRecoveryPolicy.PAD_OR_TRUNCATE,
+                rows::add,
+                diagnostics,
+                Integer.MAX_VALUE
+        );
+
+        CsvParseResult expected = csvMagikk.parseAndValidateCsv(csv.toString(), CsvRecoveryPolicy.PAD_OR_TRUNCATE);
+
+        assertFalse(aborted, "Aborted while streaming");
+        assertArrayEquals(expected.rows(), rows.toArray(String[][]::new), "Streamed rows differ from String rows");
+        assertEquals(expected.diagnostics(), diagnostics, "Streamed diagnostics differ from String diagnostics");
+    }
+
+    @Test
+    void parseAndValidateFromReaderWithTooLongRowTest() {
+        Reader reader = new StringReader("id\r\n" + "x".repeat(100) + "\r\n");
+
+        assertThrows(
+                IllegalStateException.class,
+                () -> csvMagikk.parseAndValidateCsv(reader, CsvRecoveryPolicy.ABORT, row -> { }, new ArrayList<>(), 50),
+                "Did not stop at too long row"
+        );
+    }
+
+    @Test
+    void parseAndValidateWhenCSVIsBlankTest() {
+        CsvParseResult result = csvMagikk.parseAndValidateCsv("  ", CsvRecoveryPolicy.ABORT);
+
+        assertEquals(0, result.rows().length, "Returned rows for blank csv");
+        assertTrue(result.hasErrors(), "Did not report blank csv");
+    }
+
     @Test
     void toCSVWith2DArrayTest() {
         String expectedCsv = "id,name,location\r\n" +